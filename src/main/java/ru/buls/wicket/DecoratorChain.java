@@ -0,0 +1,43 @@
+package ru.buls.wicket;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Цепочка декораторов: значение последовательно проходит через все декораторы в порядке добавления.
+ * Пример: маркер обязательного поля, затем двоеточие
+ * <pre>
+ * new DecoratorChain&lt;String&gt;().then(requiredMarker).then(new FieldsRepeater.LabelDecorator(":"))
+ * </pre>
+ */
+public class DecoratorChain<T> implements Decorator<T> {
+
+    private final List<Decorator<T>> decorators = new ArrayList<Decorator<T>>();
+
+    public DecoratorChain() {
+    }
+
+    public DecoratorChain(Collection<? extends Decorator<T>> decorators) {
+        for (Decorator<T> decorator : decorators) then(decorator);
+    }
+
+    /**
+     * добавляет декоратор в конец цепочки
+     *
+     * @return this
+     */
+    public DecoratorChain<T> then(Decorator<T> decorator) {
+        if (decorator == null) throw new NullPointerException("decorator cannot be null");
+        decorators.add(decorator);
+        return this;
+    }
+
+    @Override
+    public T decorate(T t) {
+        T result = t;
+        for (Decorator<T> decorator : decorators)
+            result = decorator.decorate(result);
+        return result;
+    }
+}
@@ -8,10 +8,23 @@ import org.apache.wicket.markup.parser.XmlTag;
 import org.apache.wicket.model.IModel;
 import org.apache.wicket.model.IObjectClassAwareModel;
 import org.apache.wicket.util.convert.ConversionException;
+import org.apache.wicket.util.convert.IConverter;
+import org.apache.wicket.util.convert.converters.BigDecimalConverter;
+import org.apache.wicket.util.convert.converters.ByteConverter;
+import org.apache.wicket.util.convert.converters.DateConverter;
+import org.apache.wicket.util.convert.converters.DoubleConverter;
+import org.apache.wicket.util.convert.converters.FloatConverter;
+import org.apache.wicket.util.convert.converters.IntegerConverter;
+import org.apache.wicket.util.convert.converters.LongConverter;
+import org.apache.wicket.util.convert.converters.ShortConverter;
 import org.apache.wicket.util.string.Strings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
 /**
  * Created by ptabachkov on 04.11.2014.
  */
@@ -51,6 +64,8 @@ public class FdcLabel<T> extends FormComponent<T> {
 
     private static final long serialVersionUID = 1L;
 
+    /** Pattern used when the label itself doesn't implement {@link ITextFormatProvider}. */
+    private String textFormat;
 
 
     /**
@@ -150,6 +165,63 @@ public class FdcLabel<T> extends FormComponent<T> {
 
 
 
+    /**
+     * Sets the pattern for dates and numbers, used unless a subclass implements
+     * {@link ITextFormatProvider}.
+     *
+     * @param textFormat
+     *            {@link java.text.SimpleDateFormat} or {@link java.text.DecimalFormat} pattern
+     * @return this
+     */
+    public final FdcLabel<T> setTextFormat(String textFormat)
+    {
+        this.textFormat = textFormat;
+        return this;
+    }
+
+    /**
+     * @return the pattern from {@link ITextFormatProvider#getTextFormat()} when implemented, otherwise
+     *         the one set by {@link #setTextFormat(String)}; may be <code>null</code>
+     */
+    protected String getTextFormatPattern()
+    {
+        if (this instanceof ITextFormatProvider)
+        {
+            return ((ITextFormatProvider)this).getTextFormat();
+        }
+        return textFormat;
+    }
+
+    /** Wicket's own converters that {@link FormatConverter} replaces when there is no pattern. */
+    private static final Set<Class<?>> STOCK_CONVERTERS = new HashSet<Class<?>>(Arrays.<Class<?>>asList(
+        DateConverter.class, BigDecimalConverter.class, DoubleConverter.class, FloatConverter.class,
+        LongConverter.class, IntegerConverter.class, ShortConverter.class, ByteConverter.class));
+
+    /**
+     * Dates and numbers with a pattern are converted by {@link FormatConverter}, which reuses cached
+     * formatters instead of creating them on each of the conversions done per render. Without a pattern
+     * it is used only in place of Wicket's default date and number converters, which build or clone a
+     * format per conversion, so application converters still take precedence.
+     *
+     * @see org.apache.wicket.Component#getConverter(Class)
+     */
+    @Override
+    public IConverter getConverter(Class<?> type)
+    {
+        String pattern = getTextFormatPattern();
+        if (FormatConverter.supports(type, pattern))
+        {
+            if (pattern != null)
+            {
+                return new FormatConverter(type, pattern);
+            }
+            IConverter converter = super.getConverter(type);
+            return converter != null && STOCK_CONVERTERS.contains(converter.getClass())
+                ? new FormatConverter(type, null) : converter;
+        }
+        return super.getConverter(type);
+    }
+
     /**
      * Should the bound object become <code>null</code> when the input is empty?
      *
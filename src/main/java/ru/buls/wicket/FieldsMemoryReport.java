@@ -0,0 +1,224 @@
+package ru.buls.wicket;
+
+import org.apache.wicket.Component;
+import org.apache.wicket.MarkupContainer;
+import org.apache.wicket.WicketRuntimeException;
+import org.apache.wicket.markup.html.basic.Label;
+import org.apache.wicket.model.AbstractReadOnlyModel;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Отчет о размере сериализованных {@link FieldsRepeater} и {@link FieldsRepeater.Enclosure} страницы.
+ * Для каждого компонента считается общий размер и его составляющие: разметка, дочерние компоненты, модели, подписи.
+ * Размеры считаются сериализацией без внешних по отношению к компоненту объектов (родитель, страница),
+ * поэтому отчет предназначен только для отладки.
+ * <p/>
+ * Пример: FieldsMemoryReport.of(getPage()).log(logger) или add(new FieldsMemoryReport.DebugLabel("memory"))
+ * на тег &lt;pre wicket:id="memory"/&gt;
+ */
+public class FieldsMemoryReport implements Serializable {
+
+    private final List<Entry> entries = new ArrayList<Entry>();
+
+    public static FieldsMemoryReport of(MarkupContainer root) {
+        final FieldsMemoryReport report = new FieldsMemoryReport();
+        if (root instanceof FieldsRepeater) report.entries.add(measure((FieldsRepeater) root));
+        root.visitChildren(new Component.IVisitor<Component>() {
+            @Override
+            public Object component(Component component) {
+                if (component instanceof FieldsRepeater)
+                    report.entries.add(measure((FieldsRepeater) component));
+                else if (component instanceof FieldsRepeater.Enclosure)
+                    report.entries.add(measure((FieldsRepeater.Enclosure) component));
+                return CONTINUE_TRAVERSAL;
+            }
+        });
+        return report;
+    }
+
+    private static Entry measure(FieldsRepeater repeater) {
+        SizeStream stream = SizeStream.of(repeater);
+        Entry entry = new Entry(repeater);
+        entry.nested = repeater.findParent(FieldsRepeater.class) != null;
+        entry.markup = stream.measure(repeater.getGeneratedMarkup());
+        entry.models = stream.measure(repeater.getDefaultModel());
+        entry.labels = stream.measure(repeater.labelDecorator);
+        for (int i = 0; i < repeater.size(); ++i)
+            entry.children += stream.measure(repeater.get(i));
+        stream.measure(repeater);
+        entry.total = stream.size();
+        return entry;
+    }
+
+    private static Entry measure(FieldsRepeater.Enclosure enclosure) {
+        SizeStream stream = SizeStream.of(enclosure);
+        Component child = enclosure.get();
+        Entry entry = new Entry(enclosure);
+        entry.markup = stream.measure(enclosure.baseMarkup);
+        entry.models = stream.measure(enclosure.getDefaultModel()) + stream.measure(child.getDefaultModel());
+        entry.labels = stream.measure(enclosure.label);
+        entry.children = stream.measure(child);
+        stream.measure(enclosure);
+        entry.total = stream.size();
+        return entry;
+    }
+
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * @return суммарный размер FieldsRepeater верхнего уровня (вложенные компоненты входят в размер своих репитеров)
+     */
+    public long getTotal() {
+        long total = 0;
+        for (Entry entry : entries)
+            if (FieldsRepeater.class.isAssignableFrom(entry.type) && !entry.nested) total += entry.total;
+        return total;
+    }
+
+    public void log(Logger logger) {
+        if (logger.isDebugEnabled()) logger.debug(toString());
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("FieldsRepeater memory, total ").append(getTotal()).append(" bytes\n");
+        builder.append("path\ttotal\tmarkup\tchildren\tmodels\tlabels\n");
+        for (Entry entry : entries) builder.append(entry).append('\n');
+        return builder.toString();
+    }
+
+    public static class Entry implements Serializable {
+        public final String path;
+        public final Class<? extends Component> type;
+        long total;
+        long markup;
+        long children;
+        long models;
+        long labels;
+        boolean nested;
+
+        Entry(Component component) {
+            path = component.getPageRelativePath();
+            type = component.getClass();
+        }
+
+        public long getTotal() {
+            return total;
+        }
+
+        public long getMarkup() {
+            return markup;
+        }
+
+        public long getChildren() {
+            return children;
+        }
+
+        public long getModels() {
+            return models;
+        }
+
+        public long getLabels() {
+            return labels;
+        }
+
+        @Override
+        public String toString() {
+            return path + '\t' + total + '\t' + markup + '\t' + children + '\t' + models + '\t' + labels;
+        }
+    }
+
+    /**
+     * Сериализует составляющие компонента в один поток и возвращает прирост размера потока для каждой,
+     * поэтому общие объекты и описания классов учитываются один раз и сумма составляющих не превышает итог.
+     * Компоненты вне измеряемого поддерева (родитель, страница, а для Enclosure - внешний репитер,
+     * на который ссылается нестатический внутренний класс) заменяются на null
+     */
+    private static class SizeStream extends ObjectOutputStream {
+        private final Component root;
+        private final CountingOutputStream out;
+
+        private SizeStream(Component root, CountingOutputStream out) throws IOException {
+            super(out);
+            this.root = root;
+            this.out = out;
+            enableReplaceObject(true);
+        }
+
+        static SizeStream of(Component root) {
+            try {
+                return new SizeStream(root, new CountingOutputStream());
+            } catch (IOException e) {
+                throw new WicketRuntimeException(e);
+            }
+        }
+
+        long measure(Object object) {
+            if (object == null) return 0;
+            long before = size();
+            try {
+                writeObject(object);
+                flush();
+            } catch (IOException e) {
+                throw new WicketRuntimeException("cannot serialize " + object, e);
+            }
+            return size() - before;
+        }
+
+        long size() {
+            return out.count;
+        }
+
+        @Override
+        protected Object replaceObject(Object obj) throws IOException {
+            if (obj instanceof Component && !isInside((Component) obj)) return null;
+            return obj;
+        }
+
+        private boolean isInside(Component component) {
+            for (Component c = component; c != null; c = c.getParent())
+                if (c == root) return true;
+            return false;
+        }
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            ++count;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
+    /**
+     * Отладочная панель с отчетом по странице, на которой находится
+     */
+    public static class DebugLabel extends Label {
+        public DebugLabel(String id) {
+            super(id);
+            setDefaultModel(new AbstractReadOnlyModel<String>() {
+                @Override
+                public String getObject() {
+                    return FieldsMemoryReport.of(getPage()).toString();
+                }
+            });
+        }
+    }
+}
@@ -11,6 +11,7 @@ import org.apache.wicket.markup.parser.XmlTag;
 import org.apache.wicket.markup.parser.filter.WicketTagIdentifier;
 import org.apache.wicket.model.IModel;
 import org.apache.wicket.model.Model;
+import org.apache.wicket.util.lang.Objects;
 import org.apache.wicket.util.resource.ResourceStreamNotFoundException;
 import org.apache.wicket.util.value.IValueMap;
 import org.slf4j.Logger;
@@ -18,6 +19,12 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import static org.apache.wicket.markup.MarkupResourceData.NO_MARKUP_RESOURCE_DATA;
 
@@ -33,7 +40,10 @@ import static org.apache.wicket.markup.MarkupResourceData.NO_MARKUP_RESOURCE_DAT
  * <wicket:label/> - подпись элемента формы
  * <wicket:field/> - элемент формы
  * <p/>
- * Комноненты добавляются методом add(Component child) или add(Component child, boolean enclosureVisible)
+ * Шаблон можно вынести в файл рядом с классом, см. {@link #setTemplate(Class, String)} и {@link FieldsTemplateStore}
+ * <p/>
+ * Комноненты добавляются методом add(Component child) или add(Component child, boolean enclosureVisible),
+ * пакетно - методами addAll, removeAll, reorder
  *
  * @see ChildTagBuilder - реализация генерации тегов для различных элементов формы
  */
@@ -45,6 +55,7 @@ public class FieldsRepeater extends MarkupContainer {
     private static final String LABEL = "label";
 
     private Logger logger = LoggerFactory.getLogger(FieldsRepeater.class);
+    private static final GeneratedMarkupParser fastParser = new GeneratedMarkupParser();
 
     static {
         WicketTagIdentifier.registerWellKnownTagName("field");
@@ -54,10 +65,45 @@ public class FieldsRepeater extends MarkupContainer {
     protected Decorator<String> labelDecorator = new LabelDecorator();
     protected ChildTagBuilder childTagBuilder = new ChildTagBuilder();
     protected boolean simplifyMarkupId = true;
+    /**
+     * запоминать подписи, декорированные стандартным {@link LabelDecorator}, см. {@link MemoizingDecorator}.
+     * Прочие декораторы могут зависеть не только от входного значения (локаль, модель),
+     * их можно обернуть в MemoizingDecorator явно
+     */
+    protected boolean memoizeLabels = true;
+    /**
+     * сверять результат {@link GeneratedMarkupParser} с полным MarkupParser (для отладки)
+     */
+    protected boolean verifyFastParse = false;
+    /**
+     * короткие идентификаторы оберток: "e-" + id элемента вместо "enclosureFor" + id элемента,
+     * см. {@link MarkupIds}
+     */
+    protected boolean compactIds = false;
 
     private String generatedMarkup;
+    private transient Markup parsedMarkup;
+    /**
+     * упрощенный парсер отверг разметку шаблона, фрагменты этого шаблона сразу разбираются полным MarkupParser
+     */
+    private transient boolean fastParseRejected;
+    private int generatedSize;
+    /**
+     * увеличивается при каждом сбросе разметки, по нему Enclosure определяют устаревание своей скомпилированной разметки
+     */
+    private int markupVersion;
+    private MemoizingDecorator<String> memoizedLabelDecorator;
+    private String memoizedPrefix;
+    private String memoizedSuffix;
     private boolean supportWicketFor = true;
     private int startMarkupIndex = -1;
+    private Class<?> templateScope;
+    private String templateName;
+    private transient Markup compiledTemplate;
+    /**
+     * отметка версии шаблона, по которому построена generatedMarkup, см. {@link FieldsTemplateStore.Template#getStamp()}
+     */
+    private String templateStamp;
 
     /**
      * На случай, когда нет возможности проставить setVisible(false) в Enclosure, можно проставить в child,
@@ -69,16 +115,171 @@ public class FieldsRepeater extends MarkupContainer {
         super(id);
     }
 
+    /**
+     * @param templateScope класс, рядом с которым лежит шаблон
+     * @param templateName  имя шаблона без расширения, см. {@link FieldsTemplateStore}
+     */
+    public FieldsRepeater(String id, Class<?> templateScope, String templateName) {
+        super(id);
+        setTemplate(templateScope, templateName);
+    }
+
     public Enclosure add(Component child) {
         return add(child, child.isVisible());
     }
 
     public Enclosure add(Component child, boolean enclosureVisible) {
         if (child instanceof Enclosure) return add((Enclosure) child, enclosureVisible);
-        else return add(newEnclosure(child), enclosureVisible);
+        //проверяем до создания обертки, иначе отвергнутый элемент останется в ней
+        checkAdd(Collections.singletonList(child));
+        return addChecked(newEnclosure(child), enclosureVisible);
     }
 
     public Enclosure add(Enclosure enclo, boolean enclosureVisible) {
+        checkAdd(Collections.singletonList(enclo));
+        return addChecked(enclo, enclosureVisible);
+    }
+
+    private Enclosure addChecked(Enclosure enclo, boolean enclosureVisible) {
+        applyVisibility(enclo, enclosureVisible);
+        super.add(enclo);
+        invalidateMarkup();
+        return enclo;
+    }
+
+    public Enclosure add(Enclosure enclo) {
+        return add(enclo, true);
+    }
+
+    /**
+     * Пакетное добавление компонентов: обертки создаются за один проход,
+     * сгенерированная разметка сбрасывается один раз на всю пачку.
+     * Видимость обертки определяется так же, как в {@link #add(Component)}.
+     * Пачка проверяется целиком до создания оберток: если хотя бы один элемент не может быть добавлен,
+     * не изменяется ни репитер, ни элементы пачки
+     *
+     * @return созданные (или переданные) обертки в порядке добавления
+     */
+    public List<Enclosure> addAll(Collection<? extends Component> children) {
+        checkAdd(children);
+        List<Enclosure> enclosures = new ArrayList<Enclosure>(children.size());
+        for (Component child : children) {
+            Enclosure enclo;
+            if (child instanceof Enclosure) {
+                enclo = (Enclosure) child;
+                applyVisibility(enclo, true);
+            } else {
+                enclo = newEnclosure(child);
+                applyVisibility(enclo, child.isVisible());
+            }
+            enclosures.add(enclo);
+        }
+        if (!enclosures.isEmpty()) {
+            super.add(enclosures.toArray(new Component[enclosures.size()]));
+            invalidateMarkup();
+        }
+        return enclosures;
+    }
+
+    /**
+     * Проверяет добавляемые элементы до создания оберток: у элемента не должно быть родителя,
+     * идентификаторы оберток не должны повторяться ни в пачке, ни среди уже добавленных.
+     * При simplifyMarkupId идентификаторы оберток и элементов выводятся в разметку как есть и не должны совпадать,
+     * префикс обертки этого не гарантирует, см. {@link MarkupIds#COMPACT_ENCLOSURE_PREFIX}.
+     * С уже добавленными обертками сверяются только идентификаторы пачки, обертка добавленного элемента
+     * ищется через get по идентификатору, построенному из id элемента
+     */
+    private void checkAdd(Collection<? extends Component> children) {
+        Set<String> enclosureIds = new HashSet<String>();
+        Set<String> fieldIds = new HashSet<String>();
+        for (Component child : children) {
+            if (child.getParent() != null) throw new IllegalArgumentException(
+                    "cannot add child '" + child.getId() + "' because it already has parent");
+            String enclosureId = child instanceof Enclosure ? child.getId() : getEnclosureId(child);
+            if (get(enclosureId) != null || !enclosureIds.add(enclosureId)) throw enclosureIdUsed(enclosureId);
+            Component field = child instanceof Enclosure ? fieldOf((Enclosure) child) : child;
+            if (field != null) fieldIds.add(field.getId());
+        }
+        if (!simplifyMarkupId) return;
+        for (String fieldId : fieldIds)
+            if (enclosureIds.contains(fieldId) || get(fieldId) != null) throw markupIdCollision(fieldId);
+        String prefix = MarkupIds.getPrefix(compactIds);
+        for (String enclosureId : enclosureIds)
+            if (get(prefix + enclosureId) != null) throw markupIdCollision(enclosureId);
+    }
+
+    private IllegalArgumentException enclosureIdUsed(String enclosureId) {
+        return new IllegalArgumentException("cannot add child because enclosure id '" + enclosureId
+                + "' is already used in " + getId());
+    }
+
+    private static IllegalArgumentException markupIdCollision(String id) {
+        return new IllegalArgumentException("id of field '" + id
+                + "' is the same as an enclosure id, rename the field or change compactIds");
+    }
+
+    private static Component fieldOf(Enclosure enclo) {
+        return enclo.size() > 0 ? enclo.get() : null;
+    }
+
+    /**
+     * Пакетное удаление. Можно передавать как обертки, так и сами элементы формы
+     */
+    public void removeAll(Collection<? extends Component> children) {
+        List<Enclosure> enclosures = new ArrayList<Enclosure>(children.size());
+        for (Component child : children) enclosures.add(getEnclosure(child));
+        for (Enclosure enclo : enclosures) super.remove(enclo);
+        if (!enclosures.isEmpty()) invalidateMarkup();
+    }
+
+    /**
+     * Переупорядочивает элементы без пересоздания иерархии компонентов.
+     * Можно передавать как обертки, так и сами элементы формы, список должен содержать все элементы репитера
+     */
+    public void reorder(List<? extends Component> order) {
+        if (order.size() != size()) throw new IllegalArgumentException(
+                "order must contain all " + size() + " fields, but contains " + order.size());
+        //проверяем весь список до первой перестановки, чтобы не оставить иерархию наполовину измененной
+        List<Enclosure> enclosures = new ArrayList<Enclosure>(order.size());
+        Set<Enclosure> unique = new HashSet<Enclosure>();
+        for (Component child : order) {
+            Enclosure enclo = getEnclosure(child);
+            if (!unique.add(enclo)) throw new IllegalArgumentException(
+                    "duplicate field '" + enclo.get().getId() + "' in order");
+            enclosures.add(enclo);
+        }
+
+        boolean changed = false;
+        for (int i = 0; i < enclosures.size(); ++i) {
+            Enclosure enclo = enclosures.get(i);
+            int index = i;
+            while (get(index) != enclo) ++index;
+            if (index != i) {
+                swap(i, index);
+                changed = true;
+            }
+        }
+        if (changed) invalidateMarkup();
+    }
+
+    /**
+     * Удаление через remove(Component) и remove(String) сбрасывает сгенерированную разметку.
+     * Как и в {@link #removeAll(Collection)}, можно передавать как обертку, так и сам элемент формы
+     */
+    @Override
+    public void remove(Component component) {
+        super.remove(getEnclosure(component));
+        invalidateMarkup();
+    }
+
+    private Enclosure getEnclosure(Component child) {
+        if (child instanceof Enclosure && child.getParent() == this) return (Enclosure) child;
+        MarkupContainer parent = child.getParent();
+        if (parent instanceof Enclosure && parent.getParent() == this) return (Enclosure) parent;
+        throw new IllegalArgumentException("'" + child.getId() + "' is not a field of " + getId());
+    }
+
+    private void applyVisibility(Enclosure enclo, boolean enclosureVisible) {
         if (inheritVisibility) {
             Component child = enclo.get();
             if (child != null) {
@@ -86,16 +287,26 @@ public class FieldsRepeater extends MarkupContainer {
             }
         } else
             enclo.setVisible(enclo.isVisible() && enclosureVisible);
-        super.add(enclo);
-        return enclo;
     }
 
-    public Enclosure add(Enclosure enclo) {
-        return add(enclo, true);
+    /**
+     * сбрасывает сгенерированную разметку, она будет построена заново при следующей отрисовке
+     */
+    protected void invalidateMarkup() {
+        generatedMarkup = null;
+        parsedMarkup = null;
+        ++markupVersion;
+    }
+
+    /**
+     * @return сгенерированная разметка или null, если репитер еще не отрисовывался
+     */
+    String getGeneratedMarkup() {
+        return generatedMarkup;
     }
 
     public Enclosure newEnclosure(Component child) {
-        if(child.getParent() != null) throw new IllegalArgumentException(
+        if (child.getParent() != null) throw new IllegalArgumentException(
                 "cannot add child '"+ child.getId() +"' because it already has parent");
         Enclosure enclo = new Enclosure(getEnclosureId(child));
         enclo.add(child);
@@ -130,22 +341,80 @@ public class FieldsRepeater extends MarkupContainer {
 
     public void setChildTagBuilder(ChildTagBuilder childTagBuilder) {
         this.childTagBuilder = childTagBuilder;
+        invalidateMarkup();
+    }
+
+    /**
+     * Использовать внешний шаблон вместо тела тега репитера в разметке страницы
+     *
+     * @see FieldsTemplateStore
+     */
+    public void setTemplate(Class<?> templateScope, String templateName) {
+        if (templateName != null && templateScope == null) throw new NullPointerException("templateScope cannot be null");
+        this.templateScope = templateScope;
+        this.templateName = templateName;
+        this.compiledTemplate = null;
+        this.templateStamp = null;
+        this.fastParseRejected = false;
+        invalidateMarkup();
     }
 
     public void setLabelDecorator(Decorator<String> labelDecorator) {
         this.labelDecorator = labelDecorator;
+        this.memoizedLabelDecorator = null;
+    }
+
+    /**
+     * @return декоратор подписей; стандартный {@link LabelDecorator} обернут в {@link MemoizingDecorator},
+     * если включен memoizeLabels. Кеш сбрасывается при изменении prefix или suffix
+     */
+    protected Decorator<String> getLabelDecorator() {
+        if (!memoizeLabels || labelDecorator == null || labelDecorator.getClass() != LabelDecorator.class)
+            return labelDecorator;
+        LabelDecorator decorator = (LabelDecorator) labelDecorator;
+        if (memoizedLabelDecorator == null || memoizedLabelDecorator.getDelegate() != decorator)
+            memoizedLabelDecorator = new MemoizingDecorator<String>(decorator);
+        else if (!Objects.equal(memoizedPrefix, decorator.prefix) || !Objects.equal(memoizedSuffix, decorator.suffix))
+            memoizedLabelDecorator.clear();
+        memoizedPrefix = decorator.prefix;
+        memoizedSuffix = decorator.suffix;
+        return memoizedLabelDecorator;
     }
 
     @Override
     public MarkupStream getAssociatedMarkupStream(boolean throwException) {
-        if (generatedMarkup == null) generatedMarkup = generateMarkup();
-        Markup markup = parse(generatedMarkup);
-        return new MarkupStream(markup);
+        if (templateName != null) {
+            //в режиме разработки хранилище вернет новую версию после изменения файла шаблона;
+            //сравниваем сериализуемую отметку, а не разметку, чтобы не перестраивать разметку восстановленной страницы
+            FieldsTemplateStore.Template template = FieldsTemplateStore.get().getCompiled(templateScope, templateName);
+            compiledTemplate = template.getMarkup();
+            if (!template.getStamp().equals(templateStamp)) {
+                templateStamp = template.getStamp();
+                fastParseRejected = false;
+                invalidateMarkup();
+            }
+        }
+        //removeAll() финальный и не вызывает remove(Component), поэтому дополнительно сверяем число элементов
+        if (generatedMarkup != null && generatedSize != size()) invalidateMarkup();
+        if (generatedMarkup == null) {
+            generatedMarkup = generateMarkup();
+            generatedSize = size();
+            parsedMarkup = null;
+        }
+        //разобранная разметка переиспользуется между перерисовками, в том числе вложенными в другой репитер
+        if (parsedMarkup == null) parsedMarkup = immutable(parse(generatedMarkup));
+        return new MarkupStream(parsedMarkup);
     }
 
     protected String generateMarkup() {
         StringBuilder builder = new StringBuilder();
 
+        if (compiledTemplate != null) {
+            generateFields(new MarkupStream(compiledTemplate), FieldsTemplateStore.getRootIndex(compiledTemplate),
+                    builder);
+            return builder.toString();
+        }
+
         MarkupStream markupStream = getMarkupStream();
         int index = markupStream.getCurrentIndex();
         try {
@@ -155,12 +424,7 @@ public class FieldsRepeater extends MarkupContainer {
                 startMarkupIndex = index;
             else markupStream.setCurrentIndex(startMarkupIndex);
 
-            for (int i = 0; i < size(); ++i) {
-                markupStream.setCurrentIndex(startMarkupIndex);
-                Component component = get(i);
-                Markup markup = generate((Enclosure) component, markupStream);
-                toBuilder(markup, builder);
-            }
+            generateFields(markupStream, startMarkupIndex, builder);
 
             return builder.toString();
         } finally {
@@ -168,6 +432,15 @@ public class FieldsRepeater extends MarkupContainer {
         }
     }
 
+    private void generateFields(MarkupStream markupStream, int startIndex, StringBuilder builder) {
+        for (int i = 0; i < size(); ++i) {
+            markupStream.setCurrentIndex(startIndex);
+            Component component = get(i);
+            Markup markup = generate((Enclosure) component, markupStream);
+            toBuilder(markup, builder);
+        }
+    }
+
     protected void toBuilder(Markup markup, StringBuilder builder) {
         for (int j = 0; j < markup.size(); ++j) {
             MarkupElement element = markup.get(j);
@@ -223,7 +496,8 @@ public class FieldsRepeater extends MarkupContainer {
 
         StringBuilder builder = new StringBuilder();
         toBuilder(baseEnclosureMarkup, builder);
-        enclosure.baseMarkup = builder.toString();
+        //при simplifyMarkupId разметка обертки одинакова на всех страницах с формой этого типа
+        enclosure.baseMarkup = simplifyMarkupId ? builder.toString().intern() : builder.toString();
 
         return endIndex;
     }
@@ -292,10 +566,13 @@ public class FieldsRepeater extends MarkupContainer {
     }
 
     private String getEnclosureId(Component child) {
-        return "enclosureFor" + child.getMarkupId();
+        //при simplifyMarkupId идентификатор строится из id элемента, одинаков для всех форм одного типа и интернируется,
+        //иначе markup id элемента содержит порядковый номер сессии, такой идентификатор не интернируется
+        if (simplifyMarkupId) return MarkupIds.enclosureId(child.getId(), compactIds);
+        return MarkupIds.getPrefix(compactIds) + child.getMarkupId();
     }
 
-    private Markup createMarkupFor(MarkupElement tag, Enclosure enclosure) {
+    private Markup createMarkupFor(MarkupElement tag, Enclosure enclosure, String label) {
         Component child = enclosure.get();
         Markup childMarkup;
         if (tag instanceof WicketTag) {
@@ -306,7 +583,7 @@ public class FieldsRepeater extends MarkupContainer {
             if ("field".equals(name))
                 childMarkup = createChildMarkup(child, wtag);
             else if (LABEL.equals(name))
-                childMarkup = getLabelMarkup(enclosure);
+                childMarkup = getLabelMarkup(label);
             else throw new IllegalStateException(tag.toString());
         } else {
             if (tag instanceof ComponentTag) tag = createLabelElement(tag, child);
@@ -339,6 +616,19 @@ public class FieldsRepeater extends MarkupContainer {
         return tag;
     }
 
+    /**
+     * @return теги, которые {@link #childTagBuilder} строит для элемента; построитель может зависеть от состояния
+     * элемента или быть заменен присваиванием поля, поэтому теги входят в ключ скомпилированной разметки обертки
+     */
+    private String getChildTags(Component child) {
+        String tagName = childTagBuilder.getTagName(child);
+        ComponentTag open = childTagBuilder.createOpenTag(child, tagName);
+        ComponentTag close = childTagBuilder.createCloseTag(tagName, open);
+        StringBuilder tags = new StringBuilder().append(open.toCharSequence());
+        if (close != null) tags.append(close.toCharSequence());
+        return tags.toString();
+    }
+
     private Markup createChildMarkup(Component child, WicketTag wtag) {
         String tagName = childTagBuilder.getTagName(child);
         ComponentTag open = childTagBuilder.createOpenTag(child, tagName);
@@ -360,9 +650,16 @@ public class FieldsRepeater extends MarkupContainer {
         return markup;
     }
 
-    private Markup getLabelMarkup(Enclosure enclosure) {
-        String label = enclosure.showLabel ? labelDecorator.decorate(getLabel(enclosure)) : "";
+    /**
+     * @return подпись элемента после декорирования или пустая строка, если подпись скрыта
+     */
+    protected String getDecoratedLabel(Enclosure enclosure) {
+        if (!enclosure.showLabel) return "";
+        Decorator<String> decorator = getLabelDecorator();
+        return decorator != null ? decorator.decorate(getLabel(enclosure)) : getLabel(enclosure);
+    }
 
+    private Markup getLabelMarkup(String label) {
         Markup markup = new Markup(NO_MARKUP_RESOURCE_DATA);
         markup.addMarkupElement(new RawMarkup(label));
 
@@ -393,6 +690,10 @@ public class FieldsRepeater extends MarkupContainer {
         }
     }
 
+    /**
+     * Построитель тегов элементов формы. Методы вызываются при каждой отрисовке обертки, разметка обертки
+     * компилируется заново, только если построенные теги изменились
+     */
     public static class ChildTagBuilder implements Serializable {
         public String getTagName(Component child) {
             String tagName;
@@ -444,6 +745,14 @@ public class FieldsRepeater extends MarkupContainer {
         boolean showLabel = true;
         public String baseMarkup;
 
+        private transient String compiledBase;
+        private transient Markup parsedBaseMarkup;
+        private transient Markup compiledMarkup;
+        private transient int compiledVersion;
+        private transient String compiledLabel;
+        private transient String compiledChildId;
+        private transient String compiledChildTags;
+
         public Enclosure(String id) {
             super(id, new Model());
         }
@@ -468,8 +777,28 @@ public class FieldsRepeater extends MarkupContainer {
         public MarkupStream getAssociatedMarkupStream(boolean throwException) {
             String markup1 = baseMarkup;
             assert markup1 != null;
-            Markup _baseMarkup = parse(markup1);
 
+            //скомпилированная разметка зависит только от шаблона, подписи, идентификатора элемента и построенных
+            //для него тегов, поэтому при повторной отрисовке (в том числе внешнего репитера) используется повторно
+            String label = getDecoratedLabel(this);
+            String childId = get().getMarkupId();
+            String childTags = getChildTags(get());
+            if (compiledMarkup == null || compiledVersion != markupVersion || compiledBase != markup1
+                    || !Objects.equal(compiledLabel, label) || !childId.equals(compiledChildId)
+                    || !childTags.equals(compiledChildTags)) {
+                if (parsedBaseMarkup == null || compiledBase != markup1)
+                    parsedBaseMarkup = immutable(parse(markup1));
+                compiledMarkup = immutable(compile(parsedBaseMarkup, label));
+                compiledBase = markup1;
+                compiledVersion = markupVersion;
+                compiledLabel = label;
+                compiledChildId = childId;
+                compiledChildTags = childTags;
+            }
+            return new MarkupStream(compiledMarkup);
+        }
+
+        private Markup compile(Markup _baseMarkup, String label) {
             Markup generatedMarkup = new Markup(NO_MARKUP_RESOURCE_DATA);
             MarkupStream markupStream = new MarkupStream(_baseMarkup);
             MarkupElement next;
@@ -485,14 +814,14 @@ public class FieldsRepeater extends MarkupContainer {
                     }
                     //assert ot == null || !startTag.getId().equals(ot.getId()) : "markup overflow";
                 }
-                Markup elemMarkup = createMarkupFor(next, this);
+                Markup elemMarkup = createMarkupFor(next, this, label);
                 copy(elemMarkup, generatedMarkup);
             }
 
             StringBuilder builder = new StringBuilder();
             toBuilder(generatedMarkup, builder);
 
-            return new MarkupStream(parse(builder.toString()));
+            return parse(builder.toString());
         }
 
         @Override
@@ -531,7 +860,51 @@ public class FieldsRepeater extends MarkupContainer {
         }
     }
 
+    /**
+     * Разбирает сгенерированную разметку упрощенным парсером {@link GeneratedMarkupParser}.
+     * Если фрагмент не удалось разобрать, используется полный MarkupParser, и до смены шаблона
+     * все фрагменты репитера разбираются им же: фрагменты строятся из одного шаблона и были бы отвергнуты снова.
+     * При включенном verifyFastParse результат упрощенного парсера сверяется с полным
+     */
     protected Markup parse(String markup) {
+        if (fastParseRejected) return parseFully(markup);
+        Markup fastMarkup;
+        try {
+            fastMarkup = fastParser.parse(markup);
+        } catch (Exception e) {
+            fastParseRejected = true;
+            if (logger.isDebugEnabled())
+                logger.debug("fast parser rejected generated markup, falling back to MarkupParser : " + markup
+                        + " : " + e.getMessage());
+            return parseFully(markup);
+        }
+        if (verifyFastParse) {
+            Markup fullMarkup = parseFully(markup);
+            if (!GeneratedMarkupParser.equivalent(fastMarkup, fullMarkup)) {
+                logger.warn("fast parser result differs from MarkupParser for generated markup : " + markup);
+                return fullMarkup;
+            }
+        }
+        return fastMarkup;
+    }
+
+    /**
+     * Разобранная разметка кешируется между отрисовками, поэтому должна быть неизменяемой:
+     * тогда Component.renderComponentTag передает в onComponentTag копию тега, а не закешированный тег.
+     * parse и parseFully уже возвращают неизменяемую разметку, проверка нужна для переопределенного parse
+     */
+    private static Markup immutable(Markup markup) {
+        for (int i = 0; i < markup.size(); ++i) {
+            MarkupElement element = markup.get(i);
+            if (element instanceof ComponentTag) {
+                if (((ComponentTag) element).mutable() == element) markup.makeImmutable();
+                break;
+            }
+        }
+        return markup;
+    }
+
+    protected Markup parseFully(String markup) {
         Markup _baseMarkup;
         try {
             _baseMarkup = new MarkupParser(markup).parse();
@@ -0,0 +1,154 @@
+package ru.buls.wicket;
+
+import org.apache.wicket.Application;
+import org.apache.wicket.MetaDataKey;
+import org.apache.wicket.markup.ComponentTag;
+import org.apache.wicket.markup.Markup;
+import org.apache.wicket.markup.MarkupException;
+import org.apache.wicket.markup.MarkupNotFoundException;
+import org.apache.wicket.markup.MarkupParser;
+import org.apache.wicket.markup.MarkupResourceStream;
+import org.apache.wicket.util.lang.Packages;
+import org.apache.wicket.util.resource.IResourceStream;
+import org.apache.wicket.util.resource.ResourceStreamNotFoundException;
+import org.apache.wicket.util.time.Time;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Хранилище скомпилированных шаблонов {@link FieldsRepeater}, одно на приложение.
+ * Шаблон - файл &lt;name&gt;.fields.html рядом с классом scope, загружается через IResourceStreamLocator приложения.
+ * Корневой тег шаблона должен иметь атрибут wicket:id, его тело - шаблон подписи и поля, например
+ * <pre>
+ * &lt;div wicket:id="fields" class="row"&gt;&lt;wicket:label/&gt; &lt;wicket:field/&gt;&lt;/div&gt;
+ * </pre>
+ * Шаблон разбирается один раз и используется всеми репитерами, в режиме разработки
+ * перечитывается при изменении времени модификации файла.
+ */
+public class FieldsTemplateStore {
+
+    public static final String EXTENSION = ".fields.html";
+
+    private static final MetaDataKey<FieldsTemplateStore> KEY = new MetaDataKey<FieldsTemplateStore>() {
+    };
+
+    private static final Logger logger = LoggerFactory.getLogger(FieldsTemplateStore.class);
+
+    private final ConcurrentMap<String, Template> templates = new ConcurrentHashMap<String, Template>();
+
+    /**
+     * @return хранилище текущего приложения; блокировка берется только при первом обращении, пока хранилище не создано
+     */
+    public static FieldsTemplateStore get() {
+        Application application = Application.get();
+        FieldsTemplateStore store = application.getMetaData(KEY);
+        if (store != null) return store;
+        synchronized (application) {
+            store = application.getMetaData(KEY);
+            if (store == null) {
+                store = new FieldsTemplateStore();
+                application.setMetaData(KEY, store);
+            }
+            return store;
+        }
+    }
+
+    /**
+     * @return скомпилированный шаблон, один и тот же экземпляр, пока файл шаблона не изменится
+     */
+    public Markup getTemplate(Class<?> scope, String name) {
+        return getCompiled(scope, name).getMarkup();
+    }
+
+    /**
+     * @return скомпилированный шаблон вместе с его отметкой версии
+     */
+    public Template getCompiled(Class<?> scope, String name) {
+        String path = Packages.absolutePath(scope, name + EXTENSION);
+        Template template = templates.get(path);
+        if (template != null && !isDevelopment()) return template;
+
+        IResourceStream stream = Application.get().getResourceSettings().getResourceStreamLocator()
+                .locate(scope, path);
+        if (stream == null) throw new MarkupNotFoundException("fields template not found: " + path);
+
+        Time lastModified = stream.lastModifiedTime();
+        if (template != null && lastModified != null && lastModified.equals(template.lastModified))
+            return template;
+
+        if (template != null) logger.info("reloading modified fields template " + path);
+        template = new Template(compile(stream, path), path, lastModified);
+        templates.put(path, template);
+        return template;
+    }
+
+    /**
+     * сбрасывает все скомпилированные шаблоны
+     */
+    public void clear() {
+        templates.clear();
+    }
+
+    /**
+     * @return индекс корневого тега шаблона
+     */
+    public static int getRootIndex(Markup template) {
+        for (int i = 0; i < template.size(); ++i)
+            if (template.get(i) instanceof ComponentTag) return i;
+        throw new MarkupException("fields template must have a root tag with wicket:id");
+    }
+
+    private Markup compile(IResourceStream stream, String path) {
+        try {
+            Markup markup = new MarkupParser(new MarkupResourceStream(stream)).parse();
+            getRootIndex(markup);
+            return markup;
+        } catch (IOException e) {
+            logger.error("error on parsing fields template : " + path, e);
+            throw new RuntimeException(e);
+        } catch (ResourceStreamNotFoundException e) {
+            logger.error("error on parsing fields template : " + path, e);
+            throw new RuntimeException(e);
+        } finally {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                logger.warn("error on closing fields template : " + path, e);
+            }
+        }
+    }
+
+    private boolean isDevelopment() {
+        return Application.DEVELOPMENT.equalsIgnoreCase(Application.get().getConfigurationType());
+    }
+
+    /**
+     * Скомпилированный шаблон. Отметка версии (путь и время модификации файла) сериализуется вместе с репитером
+     * вместо самой разметки, по ней репитер после восстановления страницы определяет, что шаблон не изменился
+     */
+    public static class Template {
+        private final Markup markup;
+        private final Time lastModified;
+        private final String stamp;
+
+        Template(Markup markup, String path, Time lastModified) {
+            this.markup = markup;
+            this.lastModified = lastModified;
+            //без времени модификации шаблон перечитывается при каждом обращении, отметка отличает загрузки
+            this.stamp = path + '@' + (lastModified != null ? lastModified.getMilliseconds()
+                    : "#" + Integer.toHexString(System.identityHashCode(markup)));
+        }
+
+        public Markup getMarkup() {
+            return markup;
+        }
+
+        public String getStamp() {
+            return stamp;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package ru.buls.wicket;
+
+import org.apache.wicket.util.convert.ConversionException;
+import org.apache.wicket.util.convert.IConverter;
+import org.apache.wicket.util.string.Strings;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.text.DateFormat;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.Format;
+import java.text.NumberFormat;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Converter for dates and numbers backed by per-thread cached formatters, so a format is built once per
+ * thread, locale and pattern instead of once per conversion. Date patterns follow {@link SimpleDateFormat},
+ * number patterns follow {@link DecimalFormat}. Without a pattern dates use the locale's short date format,
+ * like the default {@link org.apache.wicket.util.convert.converters.DateConverter}, and numbers use the locale's
+ * number format set up like Wicket's number converters: integer types parse integers only without grouping,
+ * decimal types parse through {@link BigDecimal}. Those converters clone their format on every conversion.
+ *
+ * @see FdcLabel#getConverter(Class)
+ */
+public class FormatConverter implements IConverter {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Upper bound of formatters kept per thread, the cache is cleared when it is exceeded. */
+    private static final int MAX_CACHED_FORMATS = 32;
+
+    /**
+     * Per-thread formatters. Values hold only JDK classes (a plain HashMap of JDK formats) and the ThreadLocal is
+     * not subclassed, so pooled container threads do not pin this web application's classloader after redeploy.
+     */
+    private static final ThreadLocal<Map<String, Format>> formats = new ThreadLocal<Map<String, Format>>();
+
+    private final Class<?> type;
+    private final String pattern;
+
+    /**
+     * @param type
+     *            the date or number type to convert to
+     * @param pattern
+     *            the format pattern, may be null for dates and for the number types of {@link #supports}
+     */
+    public FormatConverter(Class<?> type, String pattern) {
+        if (!supports(type, pattern))
+            throw new IllegalArgumentException("unsupported type " + type + " for pattern " + pattern);
+        this.type = type;
+        this.pattern = pattern;
+    }
+
+    /**
+     * @return whether a converter for the given type and pattern can be created
+     */
+    public static boolean supports(Class<?> type, String pattern) {
+        if (type == null) return false;
+        if (Date.class.isAssignableFrom(type)) return true;
+        if (pattern != null) return Number.class.isAssignableFrom(type);
+        return isIntegral(type) || isDecimal(type);
+    }
+
+    private static boolean isIntegral(Class<?> type) {
+        return Long.class.equals(type) || Integer.class.equals(type) || Short.class.equals(type)
+                || Byte.class.equals(type) || BigInteger.class.equals(type);
+    }
+
+    private static boolean isDecimal(Class<?> type) {
+        return Double.class.equals(type) || Float.class.equals(type) || BigDecimal.class.equals(type);
+    }
+
+    @Override
+    public Object convertToObject(String value, Locale locale) {
+        if (Strings.isEmpty(value)) return null;
+        //as in Wicket's number converters: a space is not a valid grouping separator, a no-break space is
+        if (pattern == null && !Date.class.isAssignableFrom(type)) value = value.replace(' ', '\u00A0');
+
+        Format format = getFormat(locale);
+        ParsePosition position = new ParsePosition(0);
+        Object result = format.parseObject(value, position);
+        if (result == null || position.getIndex() != value.length()) {
+            throw new ConversionException("Cannot parse '" + value + "' using format " + format)
+                    .setSourceValue(value)
+                    .setTargetType(type)
+                    .setConverter(this)
+                    .setFormat(format)
+                    .setLocale(locale);
+        }
+        return result instanceof Date ? toDate((Date) result) : toNumber((Number) result);
+    }
+
+    @Override
+    public String convertToString(Object value, Locale locale) {
+        return value != null ? getFormat(locale).format(value) : null;
+    }
+
+    private Format getFormat(Locale locale) {
+        if (locale == null) locale = Locale.getDefault();
+        String key = type.getName() + '|' + pattern + '|' + locale;
+
+        Map<String, Format> cache = formats.get();
+        if (cache == null) {
+            cache = new HashMap<String, Format>();
+            formats.set(cache);
+        }
+        Format format = cache.get(key);
+        if (format == null) {
+            format = newFormat(locale);
+            if (cache.size() >= MAX_CACHED_FORMATS) cache.clear();
+            cache.put(key, format);
+        }
+        return format;
+    }
+
+    private Format newFormat(Locale locale) {
+        if (Date.class.isAssignableFrom(type))
+            return pattern != null
+                    ? new SimpleDateFormat(pattern, locale)
+                    : DateFormat.getDateInstance(DateFormat.SHORT, locale);
+        NumberFormat format;
+        if (pattern != null) format = new DecimalFormat(pattern, new DecimalFormatSymbols(locale));
+        else if (isIntegral(type)) {
+            format = NumberFormat.getIntegerInstance(locale);
+            format.setParseIntegerOnly(true);
+            format.setGroupingUsed(false);
+        } else format = NumberFormat.getInstance(locale);
+        //without it DecimalFormat parses to Long or Double and big values lose precision;
+        //Wicket's decimal converters parse every decimal type this way
+        if (format instanceof DecimalFormat && (BigDecimal.class.equals(type) || BigInteger.class.equals(type)
+                || pattern == null && isDecimal(type)))
+            ((DecimalFormat) format).setParseBigDecimal(true);
+        return format;
+    }
+
+    private Object toDate(Date date) {
+        if (java.sql.Date.class.equals(type)) return new java.sql.Date(date.getTime());
+        if (Timestamp.class.equals(type)) return new Timestamp(date.getTime());
+        if (Time.class.equals(type)) return new Time(date.getTime());
+        return date;
+    }
+
+    private Object toNumber(Number number) {
+        if (type.isInstance(number)) return number;
+        if (BigDecimal.class.equals(type)) return new BigDecimal(number.toString());
+        if (BigInteger.class.equals(type))
+            return (number instanceof BigDecimal ? (BigDecimal) number : new BigDecimal(number.toString()))
+                    .toBigInteger();
+        if (Long.class.equals(type)) return checkRange(number, Long.MIN_VALUE, Long.MAX_VALUE).longValue();
+        if (Integer.class.equals(type)) return checkRange(number, Integer.MIN_VALUE, Integer.MAX_VALUE).intValue();
+        if (Short.class.equals(type)) return checkRange(number, Short.MIN_VALUE, Short.MAX_VALUE).shortValue();
+        if (Byte.class.equals(type)) return checkRange(number, Byte.MIN_VALUE, Byte.MAX_VALUE).byteValue();
+        if (Float.class.equals(type)) return number.floatValue();
+        if (Double.class.equals(type)) return number.doubleValue();
+        throw new ConversionException("Cannot convert " + number + " to " + type)
+                .setSourceValue(number)
+                .setTargetType(type)
+                .setConverter(this);
+    }
+
+    /**
+     * Same bounds check as Wicket's integer converters, instead of silently overflowing.
+     */
+    private Number checkRange(Number number, double min, double max) {
+        if (number.doubleValue() < min || number.doubleValue() > max)
+            throw new ConversionException("Value " + number + " is out of range for " + type)
+                    .setSourceValue(number)
+                    .setTargetType(type)
+                    .setConverter(this);
+        return number;
+    }
+}
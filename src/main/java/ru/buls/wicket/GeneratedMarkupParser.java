@@ -0,0 +1,277 @@
+package ru.buls.wicket;
+
+import org.apache.wicket.Application;
+import org.apache.wicket.markup.ComponentTag;
+import org.apache.wicket.markup.Markup;
+import org.apache.wicket.markup.MarkupElement;
+import org.apache.wicket.markup.RawMarkup;
+import org.apache.wicket.markup.WicketTag;
+import org.apache.wicket.markup.html.form.AutoLabelTagHandler;
+import org.apache.wicket.markup.parser.XmlPullParser;
+import org.apache.wicket.markup.parser.XmlTag;
+import org.apache.wicket.markup.parser.filter.HtmlHandler;
+import org.apache.wicket.markup.parser.filter.RelativePathPrefixHandler;
+import org.apache.wicket.settings.IMarkupSettings;
+import org.apache.wicket.util.resource.ResourceStreamNotFoundException;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+
+import static org.apache.wicket.markup.MarkupResourceData.NO_MARKUP_RESOURCE_DATA;
+
+/**
+ * Упрощенный парсер разметки, сгенерированной {@link FieldsRepeater}.
+ * В отличие от {@link org.apache.wicket.markup.MarkupParser} не строит цепочку фильтров, а повторяет лишь те,
+ * что срабатывают на фрагментах репитера:
+ * <ul>
+ * <li>WicketTagIdentifier - теги wicket:label и wicket:field становятся {@link WicketTag},
+ * теги с атрибутом wicket:id - {@link ComponentTag};</li>
+ * <li>HtmlHandler - закрывающие теги связываются с открывающими, незакрытые теги проверяются
+ * через {@link HtmlHandler#requiresCloseTag(String)};</li>
+ * <li>RelativePathPrefixHandler - теги с относительными href, src, background, action;</li>
+ * <li>AutoLabelTagHandler - &lt;label wicket:for&gt;.</li>
+ * </ul>
+ * Все остальное сливается в {@link RawMarkup}, результат, как и у MarkupParser, неизменяемый.
+ * <p/>
+ * Конструкции, обрабатываемые остальными фильтрами (прочие теги и атрибуты wicket:*, xmlns, тег html,
+ * открытые-закрытые div, span и т.п.), а также включенные в настройках автоссылки, сжатие пробелов и удаление
+ * комментариев, упрощенный парсер отвергает с {@link ParseException}, такие фрагменты нужно разбирать полным
+ * MarkupParser.
+ */
+public class GeneratedMarkupParser {
+
+    private static final String WICKET = "wicket";
+    private static final String WICKET_ID = WICKET + ":id";
+    private static final String WICKET_FOR = WICKET + ":for";
+    private static final String LABEL = "label";
+
+    /**
+     * теги wicket:*, которые создает и разбирает репитер
+     */
+    private static final Set<String> WICKET_TAGS = new HashSet<String>(Arrays.asList(LABEL, "field"));
+
+    /**
+     * открытые-закрытые теги, которые раскрывает OpenCloseTagExpander
+     */
+    private static final Set<String> EXPANDED_TAGS = new HashSet<String>(Arrays.asList(
+            "div", "span", "p", "strong", "b", "e", "select"));
+
+    /**
+     * атрибуты, обрабатываемые RelativePathPrefixHandler
+     */
+    private static final String[] RELATIVE_PATH_ATTRIBUTES = {"href", "src", "background", "action"};
+
+    public Markup parse(String markup) throws IOException, ResourceStreamNotFoundException, ParseException {
+        checkSettings(markup);
+
+        XmlPullParser xmlParser = new XmlPullParser();
+        xmlParser.parse(markup);
+
+        Markup result = new Markup(NO_MARKUP_RESOURCE_DATA);
+        LinkedList<ComponentTag> stack = new LinkedList<ComponentTag>();
+        XmlTag xmlTag;
+        while (null != (xmlTag = (XmlTag) xmlParser.nextTag())) {
+            ComponentTag tag = newTag(xmlTag);
+            link(stack, tag);
+            checkSupported(tag);
+            if (!tag.isClose()) {
+                prefixRelativePath(tag);
+                autoLabel(tag);
+            }
+
+            ComponentTag openTag = tag.getOpenTag();
+            if (tag.getId() != null || (tag.isClose() && openTag != null && openTag.getId() != null)) {
+                addRaw(result, xmlParser.getInputFromPositionMarker(xmlTag.getPos()));
+                result.addMarkupElement(tag);
+                xmlParser.setPositionMarker();
+            }
+        }
+        addRaw(result, xmlParser.getInputFromPositionMarker(-1));
+
+        //как и HtmlHandler, в конце разметки допускаем лишь незакрытые теги, не требующие закрывающего
+        for (ComponentTag tag : stack)
+            if (HtmlHandler.requiresCloseTag(tag.getName()))
+                throw new ParseException("tag " + tag + " does not have a close tag", tag.getPos());
+
+        result.makeImmutable();
+        return result;
+    }
+
+    private void checkSettings(String markup) throws ParseException {
+        IMarkupSettings settings = Application.get().getMarkupSettings();
+        if (settings.getAutomaticLinking())
+            throw new ParseException("automatic linking is not supported", 0);
+        if (settings.getCompressWhitespace())
+            throw new ParseException("whitespace compression is not supported", 0);
+        if (settings.getThrowExceptionOnMissingXmlDeclaration())
+            throw new ParseException("xml declaration check is not supported", 0);
+        int comment = markup.indexOf("<!--");
+        if (settings.getStripComments() && comment >= 0)
+            throw new ParseException("comments stripping is not supported", comment);
+    }
+
+    /**
+     * WicketTagIdentifier
+     */
+    private ComponentTag newTag(XmlTag xmlTag) throws ParseException {
+        ComponentTag tag;
+        if (WICKET.equalsIgnoreCase(xmlTag.getNamespace())) {
+            if (!WICKET_TAGS.contains(xmlTag.getName().toLowerCase()))
+                throw new ParseException("unsupported wicket tag " + xmlTag, xmlTag.getPos());
+            tag = new WicketTag(xmlTag);
+            tag.setId("_" + tag.getName());
+            tag.setAutoComponentTag(true);
+            tag.setModified(true);
+        } else tag = new ComponentTag(xmlTag);
+
+        String id = tag.getAttributes().getString(WICKET_ID);
+        if (id != null) {
+            if (id.trim().length() == 0)
+                throw new ParseException("the wicket:id attribute value must not be empty", tag.getPos());
+            tag.setId(id);
+        }
+        return tag;
+    }
+
+    /**
+     * HtmlHandler
+     */
+    private void link(LinkedList<ComponentTag> stack, ComponentTag tag) throws ParseException {
+        if (tag.isOpen()) stack.addFirst(tag);
+        else if (tag.isClose()) {
+            if (stack.isEmpty())
+                throw new ParseException("tag " + tag + " does not have an open tag", tag.getPos());
+            ComponentTag top = stack.removeFirst();
+            boolean mismatch = !top.hasEqualTagName(tag);
+            if (mismatch) {
+                top.setHasNoCloseTag(true);
+                while (mismatch && !HtmlHandler.requiresCloseTag(top.getName())) {
+                    top.setHasNoCloseTag(true);
+                    if (stack.isEmpty()) break;
+                    top = stack.removeFirst();
+                    mismatch = !top.hasEqualTagName(tag);
+                }
+                if (mismatch)
+                    throw new ParseException("tag " + top + " has a mismatched close tag " + tag, top.getPos());
+            }
+            tag.setOpenTag(top);
+        } else if (tag.isOpenClose()) tag.setOpenTag(tag);
+    }
+
+    /**
+     * отвергает конструкции, для которых MarkupParser применяет фильтры, не повторяемые здесь
+     */
+    private void checkSupported(ComponentTag tag) throws ParseException {
+        String name = tag.getNamespace() != null ? tag.getNamespace() + ":" + tag.getName() : tag.getName();
+        if ("html".equalsIgnoreCase(name))
+            throw new ParseException("unsupported tag " + tag, tag.getPos());
+        if (tag.isOpenClose() && EXPANDED_TAGS.contains(name.toLowerCase()))
+            throw new ParseException("unsupported open-close tag " + tag, tag.getPos());
+        for (Iterator<String> it = tag.getAttributes().keySet().iterator(); it.hasNext(); ) {
+            String attribute = it.next().toLowerCase();
+            if (attribute.startsWith("xmlns")
+                    || attribute.startsWith(WICKET + ":") && !WICKET_ID.equals(attribute) && !WICKET_FOR.equals(attribute))
+                throw new ParseException("unsupported attribute " + attribute + " of tag " + tag, tag.getPos());
+        }
+    }
+
+    /**
+     * RelativePathPrefixHandler
+     */
+    private void prefixRelativePath(ComponentTag tag) {
+        if (tag instanceof WicketTag || tag.getAttributes().get(WICKET_ID) != null) return;
+        for (String attribute : RELATIVE_PATH_ATTRIBUTES) {
+            String value = tag.getAttributes().getString(attribute);
+            if (value != null && !value.startsWith("/") && value.indexOf(':') < 0 && !value.startsWith("#")) {
+                if (tag.getId() == null) {
+                    tag.setId(RelativePathPrefixHandler.WICKET_RELATIVE_PATH_PREFIX_CONTAINER_ID);
+                    tag.setAutoComponentTag(true);
+                }
+                tag.addBehavior(RelativePathPrefixHandler.RELATIVE_PATH_BEHAVIOR);
+                tag.setModified(true);
+                return;
+            }
+        }
+    }
+
+    /**
+     * AutoLabelTagHandler
+     */
+    private void autoLabel(ComponentTag tag) throws ParseException {
+        String related = tag.getAttribute(WICKET_FOR);
+        if (related == null) return;
+        if (related.trim().length() == 0)
+            throw new ParseException("tag contains an empty wicket:for attribute", tag.getPos());
+        if (!LABEL.equalsIgnoreCase(tag.getName()))
+            throw new ParseException("attribute wicket:for can only be attached to <label> tag", tag.getPos());
+        if (tag.getId() != null)
+            throw new ParseException("attribute wicket:for cannot be used in conjunction with wicket:id", tag.getPos());
+        tag.setId(AutoLabelTagHandler.class.getName());
+        tag.setModified(true);
+        tag.setAutoComponentTag(true);
+    }
+
+    private void addRaw(Markup markup, CharSequence text) {
+        if (text != null && text.length() > 0) markup.addMarkupElement(new RawMarkup(text));
+    }
+
+    /**
+     * Сравнивает результаты разбора поэлементно: тип элемента, текст, идентификатор, атрибуты, флаги,
+     * поведения, изменяемость и связь закрывающего тега с открывающим
+     */
+    public static boolean equivalent(Markup m1, Markup m2) {
+        if (m1.size() != m2.size()) return false;
+        for (int i = 0; i < m1.size(); ++i) {
+            MarkupElement e1 = m1.get(i);
+            MarkupElement e2 = m2.get(i);
+            if (e1.getClass() != e2.getClass()) return false;
+            if (!e1.toCharSequence().toString().equals(e2.toCharSequence().toString())) return false;
+            if (e1 instanceof ComponentTag && !equivalent(m1, (ComponentTag) e1, m2, (ComponentTag) e2))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean equivalent(Markup m1, ComponentTag t1, Markup m2, ComponentTag t2) {
+        if (!equal(t1.getId(), t2.getId())) return false;
+        if (t1.getType() != t2.getType()) return false;
+        if (!equal(t1.getNamespace(), t2.getNamespace())) return false;
+        if (!equalAttributes(t1.getAttributes(), t2.getAttributes())) return false;
+        if (t1.hasNoCloseTag() != t2.hasNoCloseTag()) return false;
+        if (t1.isAutoComponentTag() != t2.isAutoComponentTag()) return false;
+        if (t1.isModified() != t2.isModified()) return false;
+        if (t1.hasBehaviors() != t2.hasBehaviors()) return false;
+        if ((t1.mutable() == t1) != (t2.mutable() == t2)) return false;
+
+        ComponentTag o1 = t1.getOpenTag();
+        ComponentTag o2 = t2.getOpenTag();
+        if (o1 == null || o2 == null) return o1 == o2;
+        if ((o1 == t1) != (o2 == t2)) return false;
+        return indexOf(m1, o1) == indexOf(m2, o2) && o1.toCharSequence().toString().equals(o2.toCharSequence().toString());
+    }
+
+    private static boolean equalAttributes(Map<String, Object> a1, Map<String, Object> a2) {
+        if (a1.size() != a2.size()) return false;
+        for (Map.Entry<String, Object> entry : a1.entrySet())
+            if (!equal(String.valueOf(entry.getValue()), String.valueOf(a2.get(entry.getKey())))
+                    || !a2.containsKey(entry.getKey()))
+                return false;
+        return true;
+    }
+
+    private static int indexOf(Markup markup, MarkupElement element) {
+        for (int i = 0; i < markup.size(); ++i)
+            if (markup.get(i) == element) return i;
+        return -1;
+    }
+
+    private static boolean equal(Object o1, Object o2) {
+        return o1 == null ? o2 == null : o1.equals(o2);
+    }
+}
@@ -0,0 +1,34 @@
+package ru.buls.wicket;
+
+/**
+ * Идентификаторы оберток, создаваемых {@link FieldsRepeater}.
+ * При simplifyMarkupId идентификатор обертки строится из id элемента и интернируется ({@link String#intern()}),
+ * поэтому одинаковые идентификаторы всех форм одного типа ссылаются на один экземпляр строки.
+ * Markup id элемента и атрибуты wicket:id и wicket:for сгенерированных тегов ссылаются на те же строки,
+ * что и идентификаторы компонентов, отдельных копий не создается.
+ */
+public final class MarkupIds {
+
+    public static final String ENCLOSURE_PREFIX = "enclosureFor";
+    /**
+     * короткий префикс. Единственный недопустимый в идентификаторах компонентов символ ':' нельзя использовать,
+     * идентификатор обертки сам является идентификатором компонента, поэтому никакой префикс не исключает
+     * совпадения с идентификатором элемента, который сам начинается с префикса (например, "e-mail");
+     * такие совпадения в пределах репитера отвергает {@link FieldsRepeater}
+     */
+    public static final String COMPACT_ENCLOSURE_PREFIX = "e-";
+
+    private MarkupIds() {
+    }
+
+    public static String getPrefix(boolean compact) {
+        return compact ? COMPACT_ENCLOSURE_PREFIX : ENCLOSURE_PREFIX;
+    }
+
+    /**
+     * @return интернированный идентификатор обертки для элемента формы, одинаковый между отрисовками и страницами
+     */
+    public static String enclosureId(String childId, boolean compact) {
+        return (getPrefix(compact) + childId).intern();
+    }
+}
@@ -0,0 +1,62 @@
+package ru.buls.wicket;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Запоминает результаты декоратора по входному значению.
+ * Кеш ограничен maxSize элементами (вытесняются давно не использованные) и не сериализуется вместе со страницей.
+ * Подходит только для декораторов, результат которых зависит лишь от входного значения.
+ */
+public class MemoizingDecorator<T> implements Decorator<T> {
+
+    public static final int DEFAULT_MAX_SIZE = 64;
+
+    private final Decorator<T> delegate;
+    private final int maxSize;
+
+    private transient Map<T, T> cache;
+
+    public MemoizingDecorator(Decorator<T> delegate) {
+        this(delegate, DEFAULT_MAX_SIZE);
+    }
+
+    public MemoizingDecorator(Decorator<T> delegate, int maxSize) {
+        if (delegate == null) throw new NullPointerException("delegate cannot be null");
+        if (maxSize <= 0) throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+        this.delegate = delegate;
+        this.maxSize = maxSize;
+    }
+
+    public Decorator<T> getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public synchronized T decorate(T t) {
+        if (t == null) return delegate.decorate(null);
+        if (cache == null) cache = newCache();
+        T result = cache.get(t);
+        if (result == null) {
+            result = delegate.decorate(t);
+            if (result != null) cache.put(t, result);
+        }
+        return result;
+    }
+
+    /**
+     * сбрасывает запомненные значения, например после изменения настроек декоратора
+     */
+    public synchronized void clear() {
+        cache = null;
+    }
+
+    private Map<T, T> newCache() {
+        return new LinkedHashMap<T, T>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<T, T> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+}
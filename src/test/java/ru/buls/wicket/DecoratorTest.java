@@ -0,0 +1,87 @@
+package ru.buls.wicket;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DecoratorTest {
+
+    @Test
+    public void chainAppliesDecoratorsInOrder() {
+        DecoratorChain<String> chain = new DecoratorChain<String>()
+                .then(new FieldsRepeater.LabelDecorator("*"))
+                .then(new FieldsRepeater.LabelDecorator(":"));
+        assertEquals("name*:", chain.decorate("name"));
+        assertEquals("name", new DecoratorChain<String>().decorate("name"));
+    }
+
+    @Test
+    public void chainRejectsNullDecorators() {
+        try {
+            new DecoratorChain<String>().then(null);
+            fail("null decorator must be rejected");
+        } catch (NullPointerException expected) {
+        }
+        List<Decorator<String>> decorators = new ArrayList<Decorator<String>>();
+        decorators.add(new FieldsRepeater.LabelDecorator(":"));
+        decorators.add(null);
+        try {
+            new DecoratorChain<String>(decorators);
+            fail("null decorator must be rejected");
+        } catch (NullPointerException expected) {
+        }
+    }
+
+    @Test
+    public void memoizingDecoratorCachesResults() {
+        CountingDecorator delegate = new CountingDecorator();
+        MemoizingDecorator<String> decorator = new MemoizingDecorator<String>(delegate);
+        assertEquals("a:", decorator.decorate("a"));
+        assertEquals("a:", decorator.decorate("a"));
+        assertEquals(1, delegate.calls);
+
+        decorator.clear();
+        assertEquals("a:", decorator.decorate("a"));
+        assertEquals(2, delegate.calls);
+    }
+
+    @Test
+    public void memoizingDecoratorPassesNullThrough() {
+        CountingDecorator delegate = new CountingDecorator();
+        MemoizingDecorator<String> decorator = new MemoizingDecorator<String>(delegate);
+        assertNull(decorator.decorate(null));
+        assertNull(decorator.decorate(null));
+        //null не кешируется, каждый вызов доходит до делегата
+        assertEquals(2, delegate.calls);
+    }
+
+    @Test
+    public void memoizingDecoratorEvictsLeastRecentlyUsed() {
+        CountingDecorator delegate = new CountingDecorator();
+        MemoizingDecorator<String> decorator = new MemoizingDecorator<String>(delegate, 2);
+        decorator.decorate("a");
+        decorator.decorate("b");
+        decorator.decorate("a");
+        decorator.decorate("c");
+        assertEquals(3, delegate.calls);
+
+        //"a" использовалось недавно и осталось в кеше, "b" вытеснено
+        decorator.decorate("a");
+        assertEquals(3, delegate.calls);
+        decorator.decorate("b");
+        assertEquals(4, delegate.calls);
+    }
+
+    private static class CountingDecorator implements Decorator<String> {
+        int calls;
+
+        @Override
+        public String decorate(String s) {
+            ++calls;
+            return s != null ? s + ":" : null;
+        }
+    }
+}
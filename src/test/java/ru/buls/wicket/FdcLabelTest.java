@@ -0,0 +1,95 @@
+package ru.buls.wicket;
+
+import org.apache.wicket.model.Model;
+import org.apache.wicket.util.convert.ConverterLocator;
+import org.apache.wicket.util.convert.IConverter;
+import org.apache.wicket.util.convert.converters.DoubleConverter;
+import org.apache.wicket.util.tester.WicketTester;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+public class FdcLabelTest {
+
+    private WicketTester tester;
+
+    @Before
+    public void setUp() {
+        tester = new WicketTester();
+        tester.getWicketSession().setLocale(Locale.US);
+    }
+
+    @After
+    public void tearDown() {
+        tester.destroy();
+    }
+
+    @Test
+    public void textFormat() {
+        FdcLabel<BigDecimal> label = new FdcLabel<BigDecimal>("amount",
+                Model.of(new BigDecimal("1234.5")), BigDecimal.class);
+        label.setTextFormat("#,##0.00");
+        assertTrue(label.getConverter(BigDecimal.class) instanceof FormatConverter);
+        assertEquals("1,234.50", label.getDefaultModelObjectAsString());
+        assertEquals(new BigDecimal("12345678901234567.89"),
+                label.getConverter(BigDecimal.class).convertToObject("12,345,678,901,234,567.89", Locale.US));
+    }
+
+    @Test
+    public void textFormatProvider() {
+        Date date = new GregorianCalendar(2014, Calendar.NOVEMBER, 4).getTime();
+        ProviderLabel label = new ProviderLabel("date", date);
+        //шаблон ITextFormatProvider важнее заданного через setTextFormat
+        label.setTextFormat("yyyy");
+        assertEquals("04.11.2014", label.getDefaultModelObjectAsString());
+        assertEquals(date, label.getConverter(Date.class).convertToObject("04.11.2014", Locale.US));
+    }
+
+    @Test
+    public void numbersWithoutPatternUseCachedFormats() {
+        FdcLabel<BigDecimal> amount = new FdcLabel<BigDecimal>("amount",
+                Model.of(new BigDecimal("1234.5")), BigDecimal.class);
+        assertTrue(amount.getConverter(BigDecimal.class) instanceof FormatConverter);
+        assertEquals("1,234.5", amount.getDefaultModelObjectAsString());
+        assertEquals(new BigDecimal("12345678901234567.89"),
+                amount.getConverter(BigDecimal.class).convertToObject("12,345,678,901,234,567.89", Locale.US));
+
+        FdcLabel<Integer> count = new FdcLabel<Integer>("count", Model.of(12345), Integer.class);
+        assertTrue(count.getConverter(Integer.class) instanceof FormatConverter);
+        assertEquals("12345", count.getDefaultModelObjectAsString());
+        assertEquals(42, count.getConverter(Integer.class).convertToObject("42", Locale.US));
+    }
+
+    @Test
+    public void applicationConvertersTakePrecedence() {
+        IConverter custom = new DoubleConverter() {
+            @Override
+            public String convertToString(Object value, Locale locale) {
+                return "custom";
+            }
+        };
+        ((ConverterLocator) tester.getApplication().getConverterLocator()).set(Double.class, custom);
+        FdcLabel<Double> label = new FdcLabel<Double>("value", Model.of(1.5), Double.class);
+        assertSame(custom, label.getConverter(Double.class));
+        assertEquals("custom", label.getDefaultModelObjectAsString());
+    }
+
+    private static class ProviderLabel extends FdcLabel<Date> implements FdcLabel.ITextFormatProvider {
+        ProviderLabel(String id, Date date) {
+            super(id, Model.of(date), Date.class);
+        }
+
+        @Override
+        public String getTextFormat() {
+            return "dd.MM.yyyy";
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package ru.buls.wicket;
+
+import org.apache.wicket.util.tester.WicketTester;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FieldsMemoryReportTest {
+
+    private WicketTester tester;
+
+    @Before
+    public void setUp() {
+        tester = new WicketTester();
+    }
+
+    @After
+    public void tearDown() {
+        tester.destroy();
+    }
+
+    @Test
+    public void enclosureSizesExcludeOuterPage() {
+        FieldsRepeaterTest.FieldsPage page = new FieldsRepeaterTest.FieldsPage();
+        tester.startPage(page);
+
+        FieldsMemoryReport report = FieldsMemoryReport.of(page);
+        FieldsMemoryReport.Entry repeater = report.getEntries().get(0);
+        assertEquals(FieldsRepeater.class, repeater.type);
+        assertEquals(4, report.getEntries().size());
+        assertTrue(report.toString(), repeater.getTotal() < page.getSizeInBytes());
+        assertTrue(report.toString(), repeater.getChildren() <= repeater.getTotal());
+        //Enclosure - нестатический внутренний класс, его размер не должен включать внешний репитер
+        for (FieldsMemoryReport.Entry entry : report.getEntries().subList(1, 4)) {
+            assertEquals(FieldsRepeater.Enclosure.class, entry.type);
+            assertTrue(report.toString(), entry.getTotal() < repeater.getChildren());
+            assertTrue(report.toString(), entry.getMarkup() + entry.getChildren() + entry.getModels()
+                    + entry.getLabels() <= entry.getTotal());
+        }
+    }
+}
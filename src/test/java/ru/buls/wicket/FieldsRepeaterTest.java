@@ -0,0 +1,268 @@
+package ru.buls.wicket;
+
+import org.apache.wicket.Component;
+import org.apache.wicket.MarkupContainer;
+import org.apache.wicket.behavior.AttributeAppender;
+import org.apache.wicket.markup.ComponentTag;
+import org.apache.wicket.markup.IMarkupResourceStreamProvider;
+import org.apache.wicket.markup.html.WebPage;
+import org.apache.wicket.markup.html.form.Form;
+import org.apache.wicket.markup.html.form.FormComponent;
+import org.apache.wicket.markup.html.form.TextField;
+import org.apache.wicket.model.Model;
+import org.apache.wicket.util.resource.IResourceStream;
+import org.apache.wicket.util.resource.StringResourceStream;
+import org.apache.wicket.util.tester.WicketTester;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FieldsRepeaterTest {
+
+    private WicketTester tester;
+
+    @Before
+    public void setUp() {
+        tester = new WicketTester();
+    }
+
+    @After
+    public void tearDown() {
+        tester.destroy();
+    }
+
+    @Test
+    public void reorderRejectsDuplicatesWithoutChangingOrder() {
+        FieldsPage page = new FieldsPage();
+        try {
+            page.fields.reorder(Arrays.asList(page.b, page.b, page.a));
+            fail("duplicate field must be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+        assertSame(page.a.getParent(), page.fields.get(0));
+        assertSame(page.b.getParent(), page.fields.get(1));
+        assertSame(page.c.getParent(), page.fields.get(2));
+    }
+
+    @Test
+    public void addAllWrapsFieldsInOrder() {
+        FieldsRepeater fields = new FieldsRepeater("fields");
+        TextField<String> a = new TextField<String>("a");
+        TextField<String> b = new TextField<String>("b");
+        List<FieldsRepeater.Enclosure> enclosures = fields.addAll(Arrays.asList(a, b));
+        assertEquals(2, fields.size());
+        assertSame(a, enclosures.get(0).get());
+        assertSame(b, enclosures.get(1).get());
+        assertSame(enclosures.get(0), fields.get(0));
+        assertSame(enclosures.get(1), fields.get(1));
+    }
+
+    @Test
+    public void addAllRejectsBatchWithoutWrappingFields() {
+        FieldsRepeater fields = new FieldsRepeater("fields");
+        TextField<String> a = new TextField<String>("a");
+        TextField<String> b = new TextField<String>("b");
+        TextField<String> owned = new TextField<String>("owned");
+        new Form<Void>("form").add(owned);
+        try {
+            fields.addAll(Arrays.asList(a, b, owned));
+            fail("field with parent must be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals(0, fields.size());
+        assertNull(a.getParent());
+        assertNull(b.getParent());
+
+        try {
+            fields.addAll(Arrays.asList(a, b, a));
+            fail("duplicate field must be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals(0, fields.size());
+        assertNull(a.getParent());
+
+        fields.addAll(Arrays.asList(a, b));
+        assertEquals(2, fields.size());
+    }
+
+    @Test
+    public void removeAcceptsFieldsAndEnclosures() {
+        FieldsPage page = new FieldsPage();
+        page.fields.removeAll(Arrays.asList(page.a, page.b.getParent()));
+        assertEquals(1, page.fields.size());
+        assertSame(page.c.getParent(), page.fields.get(0));
+
+        page.fields.remove(page.c);
+        assertEquals(0, page.fields.size());
+        try {
+            page.fields.remove(page.a);
+            fail("removed field must be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void reorderAfterRender() {
+        FieldsPage page = new FieldsPage();
+        tester.startPage(page);
+        page.fields.reorder(Arrays.asList(page.c, page.a, page.b));
+        tester.startPage(page);
+        String document = tester.getServletResponse().getDocument();
+        assertTrue(document, document.indexOf("wicket:id=\"c\"") < document.indexOf("wicket:id=\"a\""));
+        assertTrue(document, document.indexOf("wicket:id=\"a\"") < document.indexOf("wicket:id=\"b\""));
+    }
+
+    @Test
+    public void removeAfterRender() {
+        FieldsPage page = new FieldsPage();
+        tester.startPage(page);
+        page.fields.remove(page.b.getParent());
+        tester.startPage(page);
+        String document = tester.getServletResponse().getDocument();
+        assertFalse(document, document.contains("wicket:id=\"b\""));
+        assertTrue(document, document.contains("wicket:id=\"c\""));
+    }
+
+    @Test
+    public void renderTwiceWithChangedAttributes() {
+        FieldsPage page = new FieldsPage();
+        page.a.add(new AttributeAppender("class", true, Model.of("c"), " "));
+        page.b.setEnabled(false);
+        tester.startPage(page);
+        String document = tester.getServletResponse().getDocument();
+        assertTrue(document, document.contains("disabled=\"disabled\""));
+
+        //разметка переиспользуется между отрисовками, onComponentTag не должен менять закешированные теги
+        page.b.setEnabled(true);
+        tester.startPage(page);
+        tester.startPage(page);
+        document = tester.getServletResponse().getDocument();
+        assertTrue(document, document.contains("class=\"c\""));
+        assertFalse(document, document.contains("c c"));
+        assertFalse(document, document.contains("disabled"));
+    }
+
+    @Test
+    public void compactEnclosureIdCollision() {
+        FieldsRepeater fields = new FieldsRepeater("fields");
+        fields.compactIds = true;
+        FieldsRepeater.Enclosure mail = fields.add(new TextField<String>("mail"));
+        assertTrue(mail.getId(), mail.getId().startsWith(MarkupIds.COMPACT_ENCLOSURE_PREFIX));
+        try {
+            fields.add(new TextField<String>(mail.getId()));
+            fail("field id equal to enclosure id must be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals(1, fields.size());
+
+        //id обертки нового элемента совпадает с id уже добавленного элемента
+        fields.add(new TextField<String>("e-phone"));
+        try {
+            fields.add(new TextField<String>("phone"));
+            fail("enclosure id equal to field id must be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals(2, fields.size());
+    }
+
+    @Test
+    public void enclosureIdsAreSharedByPagesOfSameForm() {
+        FieldsPage first = new FieldsPage();
+        FieldsPage second = new FieldsPage();
+        assertEquals("enclosureFora", first.a.getParent().getId());
+        assertSame(first.a.getParent().getId(), second.a.getParent().getId());
+        assertSame(first.a.getParent().getMarkupId(), second.a.getParent().getMarkupId());
+        assertSame(first.a.getId(), first.a.getMarkupId());
+
+        tester.startPage(first);
+        tester.startPage(second);
+        assertSame(((FieldsRepeater.Enclosure) first.b.getParent()).baseMarkup,
+                ((FieldsRepeater.Enclosure) second.b.getParent()).baseMarkup);
+    }
+
+    @Test
+    public void labelDecoratorCacheResetOnAffixChange() {
+        FieldsRepeater fields = new FieldsRepeater("fields");
+        FieldsRepeater.LabelDecorator labelDecorator = new FieldsRepeater.LabelDecorator(":");
+        fields.setLabelDecorator(labelDecorator);
+        assertEquals("a:", fields.getLabelDecorator().decorate("a"));
+        assertTrue(fields.getLabelDecorator() instanceof MemoizingDecorator);
+
+        labelDecorator.suffix = "*";
+        assertEquals("a*", fields.getLabelDecorator().decorate("a"));
+        labelDecorator.prefix = "-";
+        assertEquals("-a*", fields.getLabelDecorator().decorate("a"));
+    }
+
+    @Test
+    public void onlyStockLabelDecoratorIsMemoized() {
+        FieldsRepeater fields = new FieldsRepeater("fields");
+        DecoratorChain<String> chain = new DecoratorChain<String>(
+                Collections.<Decorator<String>>singletonList(new FieldsRepeater.LabelDecorator(":")));
+        fields.setLabelDecorator(chain);
+        assertSame(chain, fields.getLabelDecorator());
+    }
+
+    @Test
+    public void childTagsDependingOnFieldStateRecompileEnclosure() {
+        FieldsPage page = new FieldsPage();
+        page.fields.setChildTagBuilder(new RequiredTagBuilder());
+        tester.startPage(page);
+        String document = tester.getServletResponse().getDocument();
+        assertFalse(document, document.contains("data-required"));
+
+        page.a.setRequired(true);
+        tester.startPage(page);
+        document = tester.getServletResponse().getDocument();
+        assertEquals(document, 1, count(document, "data-required=\"true\""));
+
+        //построитель, присвоенный напрямую, минуя setChildTagBuilder
+        page.fields.childTagBuilder = new FieldsRepeater.ChildTagBuilder();
+        tester.startPage(page);
+        document = tester.getServletResponse().getDocument();
+        assertFalse(document, document.contains("data-required"));
+    }
+
+    private static int count(String s, String part) {
+        int count = 0;
+        for (int i = s.indexOf(part); i >= 0; i = s.indexOf(part, i + 1)) ++count;
+        return count;
+    }
+
+    private static class RequiredTagBuilder extends FieldsRepeater.ChildTagBuilder {
+        @Override
+        protected ComponentTag createOpenTag(Component child, String tagName) {
+            ComponentTag open = super.createOpenTag(child, tagName);
+            if (child instanceof FormComponent && ((FormComponent<?>) child).isRequired())
+                open.put("data-required", "true");
+            return open;
+        }
+    }
+
+    public static class FieldsPage extends WebPage implements IMarkupResourceStreamProvider {
+        final FieldsRepeater fields = new FieldsRepeater("fields");
+        final TextField<String> a = new TextField<String>("a", Model.of("1"));
+        final TextField<String> b = new TextField<String>("b", Model.of("2"));
+        final TextField<String> c = new TextField<String>("c", Model.of("3"));
+
+        public FieldsPage() {
+            Form<Void> form = new Form<Void>("form");
+            add(form);
+            form.add(fields);
+            fields.addAll(Arrays.asList(a, b, c));
+        }
+
+        @Override
+        public IResourceStream getMarkupResourceStream(MarkupContainer container, Class<?> containerClass) {
+            return new StringResourceStream("<html><body><form wicket:id=\"form\">"
+                    + "<div wicket:id=\"fields\"><wicket:label/> <wicket:field/></div>"
+                    + "</form></body></html>");
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package ru.buls.wicket;
+
+import org.apache.wicket.Application;
+import org.apache.wicket.MarkupContainer;
+import org.apache.wicket.markup.IMarkupResourceStreamProvider;
+import org.apache.wicket.markup.Markup;
+import org.apache.wicket.markup.MarkupNotFoundException;
+import org.apache.wicket.markup.html.WebPage;
+import org.apache.wicket.markup.html.form.Form;
+import org.apache.wicket.markup.html.form.TextField;
+import org.apache.wicket.model.Model;
+import org.apache.wicket.util.file.Folder;
+import org.apache.wicket.util.file.Path;
+import org.apache.wicket.util.lang.Objects;
+import org.apache.wicket.util.resource.IResourceStream;
+import org.apache.wicket.util.resource.StringResourceStream;
+import org.apache.wicket.util.resource.locator.ResourceStreamLocator;
+import org.apache.wicket.util.tester.WicketTester;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import static org.junit.Assert.*;
+
+public class FieldsTemplateStoreTest {
+
+    private static final String TEMPLATE = "<div wicket:id=\"fields\" class=\"row\"><wicket:label/> <wicket:field/></div>";
+
+    private WicketTester tester;
+    private File root;
+    private File template;
+
+    @Before
+    public void setUp() throws IOException {
+        tester = new WicketTester();
+        assertEquals(Application.DEVELOPMENT, tester.getApplication().getConfigurationType());
+
+        root = File.createTempFile("fields", "");
+        assertTrue(root.delete());
+        File folder = new File(root, "ru/buls/wicket");
+        assertTrue(folder.mkdirs());
+        template = new File(folder, "row" + FieldsTemplateStore.EXTENSION);
+        write(TEMPLATE);
+        tester.getApplication().getResourceSettings()
+                .setResourceStreamLocator(new ResourceStreamLocator(new Path(new Folder(root))));
+    }
+
+    @After
+    public void tearDown() {
+        tester.destroy();
+        template.delete();
+        for (File dir = template.getParentFile(); dir != null && !dir.equals(root.getParentFile());
+             dir = dir.getParentFile())
+            dir.delete();
+    }
+
+    @Test
+    public void loadsTemplateOnce() {
+        FieldsTemplateStore store = FieldsTemplateStore.get();
+        assertSame(store, FieldsTemplateStore.get());
+        Markup markup = store.getTemplate(FieldsTemplateStoreTest.class, "row");
+        assertSame(markup, store.getTemplate(FieldsTemplateStoreTest.class, "row"));
+        assertTrue(markup.get(FieldsTemplateStore.getRootIndex(markup)).toString().contains("class=\"row\""));
+    }
+
+    @Test
+    public void templateSharedByRepeaters() {
+        TemplatePage page = new TemplatePage();
+        tester.startPage(page);
+        String document = tester.getServletResponse().getDocument();
+        assertEquals(document, 2, count(document, "class=\"row\""));
+        assertTrue(document, document.contains("wicket:id=\"a\""));
+        assertTrue(document, document.contains("wicket:id=\"b\""));
+    }
+
+    @Test(expected = MarkupNotFoundException.class)
+    public void missingTemplate() {
+        FieldsTemplateStore.get().getTemplate(FieldsTemplateStoreTest.class, "missing");
+    }
+
+    @Test
+    public void reloadsModifiedTemplate() throws IOException {
+        FieldsTemplateStore store = FieldsTemplateStore.get();
+        FieldsTemplateStore.Template before = store.getCompiled(FieldsTemplateStoreTest.class, "row");
+
+        write(TEMPLATE.replace("row", "line"));
+        assertTrue(template.setLastModified(template.lastModified() + 5000));
+        FieldsTemplateStore.Template after = store.getCompiled(FieldsTemplateStoreTest.class, "row");
+        assertNotSame(before.getMarkup(), after.getMarkup());
+        assertFalse(before.getStamp().equals(after.getStamp()));
+        assertTrue(after.getMarkup().toString().contains("line"));
+        assertSame(after, store.getCompiled(FieldsTemplateStoreTest.class, "row"));
+    }
+
+    @Test
+    public void deserializedRepeaterKeepsGeneratedMarkup() {
+        TemplatePage page = new TemplatePage();
+        tester.startPage(page);
+
+        TemplatePage restored = (TemplatePage) Objects.cloneObject(page);
+        String generated = restored.first.getGeneratedMarkup();
+        assertNotNull(generated);
+        tester.startPage(restored);
+        assertSame(generated, restored.first.getGeneratedMarkup());
+    }
+
+    private void write(String content) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(template), "UTF-8");
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static int count(String s, String part) {
+        int count = 0;
+        for (int i = s.indexOf(part); i >= 0; i = s.indexOf(part, i + 1)) ++count;
+        return count;
+    }
+
+    public static class TemplatePage extends WebPage implements IMarkupResourceStreamProvider {
+        final FieldsRepeater first = new FieldsRepeater("first", FieldsTemplateStoreTest.class, "row");
+        final FieldsRepeater second = new FieldsRepeater("second", FieldsTemplateStoreTest.class, "row");
+
+        public TemplatePage() {
+            Form<Void> form = new Form<Void>("form");
+            add(form);
+            form.add(first);
+            form.add(second);
+            first.add(new TextField<String>("a", Model.of("1")));
+            second.add(new TextField<String>("b", Model.of("2")));
+        }
+
+        @Override
+        public IResourceStream getMarkupResourceStream(MarkupContainer container, Class<?> containerClass) {
+            return new StringResourceStream("<html><body><form wicket:id=\"form\">"
+                    + "<div wicket:id=\"first\"></div><div wicket:id=\"second\"></div>"
+                    + "</form></body></html>");
+        }
+    }
+}
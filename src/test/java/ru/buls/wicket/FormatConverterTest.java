@@ -0,0 +1,44 @@
+package ru.buls.wicket;
+
+import org.apache.wicket.util.convert.ConversionException;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+public class FormatConverterTest {
+
+    @Test
+    public void bigNumbersKeepPrecision() {
+        String pattern = "#,##0.################";
+        assertEquals(new BigDecimal("12345678901234567.123456789"),
+                new FormatConverter(BigDecimal.class, pattern).convertToObject("12,345,678,901,234,567.123456789", Locale.US));
+        assertEquals(new BigInteger("123456789012345678901234567890"),
+                new FormatConverter(BigInteger.class, pattern).convertToObject("123456789012345678901234567890", Locale.US));
+    }
+
+    @Test
+    public void formatsAreCachedPerType() {
+        String pattern = "0.##";
+        //the same pattern and locale must not share a BigDecimal-parsing format with Double
+        assertEquals(1.5d, new FormatConverter(Double.class, pattern).convertToObject("1.5", Locale.US));
+        assertEquals(new BigDecimal("1.5"), new FormatConverter(BigDecimal.class, pattern).convertToObject("1.5", Locale.US));
+        assertEquals(1.5d, new FormatConverter(Double.class, pattern).convertToObject("1.5", Locale.US));
+    }
+
+    @Test(expected = ConversionException.class)
+    public void integerOverflowRejected() {
+        new FormatConverter(Integer.class, null).convertToObject("3000000000", Locale.US);
+    }
+
+    @Test
+    public void defaultNumberFormats() {
+        assertEquals(1234567L, new FormatConverter(Long.class, null).convertToObject("1234567", Locale.US));
+        assertEquals(1234.5d, new FormatConverter(Double.class, null).convertToObject("1,234.5", Locale.US));
+        assertEquals(new BigDecimal("1234.5"),
+                new FormatConverter(BigDecimal.class, null).convertToObject("1 234,5", new Locale("ru")));
+    }
+}
@@ -0,0 +1,108 @@
+package ru.buls.wicket;
+
+import org.apache.wicket.markup.ComponentTag;
+import org.apache.wicket.markup.Markup;
+import org.apache.wicket.markup.MarkupElement;
+import org.apache.wicket.markup.MarkupParser;
+import org.apache.wicket.markup.html.form.AutoLabelTagHandler;
+import org.apache.wicket.markup.parser.filter.RelativePathPrefixHandler;
+import org.apache.wicket.util.tester.WicketTester;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.text.ParseException;
+
+import static org.junit.Assert.*;
+
+public class GeneratedMarkupParserTest {
+
+    private WicketTester tester;
+    private FieldsRepeaterTest.FieldsPage page;
+    private final GeneratedMarkupParser parser = new GeneratedMarkupParser();
+
+    @Before
+    public void setUp() {
+        tester = new WicketTester();
+        //страница регистрирует теги wicket:label и wicket:field и дает реальные сгенерированные фрагменты
+        page = new FieldsRepeaterTest.FieldsPage();
+        tester.startPage(page);
+    }
+
+    @After
+    public void tearDown() {
+        tester.destroy();
+    }
+
+    @Test
+    public void generatedFragments() throws Exception {
+        FieldsRepeater fields = (FieldsRepeater) page.get("form:fields");
+        assertEquivalent(fields.getGeneratedMarkup());
+        for (int i = 0; i < fields.size(); ++i)
+            assertEquivalent(((FieldsRepeater.Enclosure) fields.get(i)).baseMarkup);
+    }
+
+    @Test
+    public void autoLabel() throws Exception {
+        Markup markup = assertEquivalent("<div wicket:id=\"enclosureFora1\"><label wicket:for=\"a1\">A</label> "
+                + "<input type=\"text\" wicket:id=\"a1\"></input></div>");
+        ComponentTag label = (ComponentTag) markup.get(1);
+        assertEquals(AutoLabelTagHandler.class.getName(), label.getId());
+        assertTrue(label.isAutoComponentTag());
+    }
+
+    @Test
+    public void relativePath() throws Exception {
+        Markup markup = assertEquivalent("<div wicket:id=\"e\"><a href=\"help.html\">?</a> <a href=\"/abs\">!</a>"
+                + " <a href=\"#top\">^</a> <img src=\"http://host/i.png\"/></div>");
+        ComponentTag link = (ComponentTag) markup.get(1);
+        assertEquals(RelativePathPrefixHandler.WICKET_RELATIVE_PATH_PREFIX_CONTAINER_ID, link.getId());
+        assertTrue(link.hasBehaviors());
+    }
+
+    @Test
+    public void voidTags() throws Exception {
+        assertEquivalent("<div wicket:id=\"e\"><br><img src=\"/i.png\"><input wicket:id=\"a1\"></input><hr/></div>");
+        assertEquivalent("<div wicket:id=\"e\"><p>one<p>two<p wicket:id=\"p\">three</div>");
+        assertEquivalent("<p wicket:id=\"p\">unclosed");
+        assertEquivalent("<wicket:label/> <wicket:field type=\"text\"/>");
+    }
+
+    @Test
+    public void immutable() throws Exception {
+        Markup markup = parser.parse("<div wicket:id=\"e\"><span wicket:id=\"s\"></span></div>");
+        for (int i = 0; i < markup.size(); ++i) {
+            MarkupElement element = markup.get(i);
+            if (element instanceof ComponentTag) assertNotSame(element, ((ComponentTag) element).mutable());
+        }
+    }
+
+    @Test
+    public void rejectsUnsupported() throws Exception {
+        assertRejected("<div wicket:id=\"e\"><span wicket:id=\"s\"/></div>");
+        assertRejected("<div wicket:id=\"e\" wicket:enclosure=\"s\"><span wicket:id=\"s\"></span></div>");
+        assertRejected("<div wicket:id=\"e\"><wicket:message key=\"k\"/></div>");
+        assertRejected("<html xmlns:wicket=\"http://wicket.apache.org\"><div wicket:id=\"e\"></div></html>");
+        assertRejected("<div wicket:id=\"e\"><span></div>");
+
+        tester.getApplication().getMarkupSettings().setStripComments(true);
+        assertRejected("<div wicket:id=\"e\"><!-- c --></div>");
+        assertEquivalent("<div wicket:id=\"e\"></div>");
+    }
+
+    private Markup assertEquivalent(String fragment) throws Exception {
+        Markup fast = parser.parse(fragment);
+        Markup full = new MarkupParser(fragment).parse();
+        assertTrue(fragment + "\nfast: " + fast + "\nfull: " + full, GeneratedMarkupParser.equivalent(fast, full));
+        return fast;
+    }
+
+    private void assertRejected(String fragment) throws Exception {
+        try {
+            parser.parse(fragment);
+            fail("fast parser accepted " + fragment);
+        } catch (ParseException e) {
+            //ожидаемо: фрагмент разбирается полным MarkupParser
+        }
+    }
+}